@@ -90,6 +90,8 @@ public class ChunkedMappedOutputStream extends OutputStream {
 
     @Override
     public synchronized void close() throws IOException {
+        // the wrapping Writer and try-with-resources may both close us
+        if (!channel.isOpen()) return;
         try {
             if (mapped != null) {
                 try {
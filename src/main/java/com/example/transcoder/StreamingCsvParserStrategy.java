@@ -0,0 +1,229 @@
+package com.example.transcoder;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Streaming CSV implementation for files with very large (CLOB-like) fields.
+ *
+ * Unlike uniVocity / Commons CSV it never materializes a whole field as a String.
+ * Each field is collected in a bounded char buffer; if the field fits, it is written
+ * with the usual "quote only when needed" rule. If it overflows the buffer, the field
+ * is switched to streaming mode: an opening quote is written, the buffer is flushed
+ * with quotes doubled, and the rest of the field is copied through the same buffer
+ * directly into the output Writer. Heap use per job is therefore capped by
+ * maxBufferedFieldChars plus the read buffer, regardless of field size.
+ *
+ * Field content is kept lossless: no whitespace trimming is applied.
+ */
+@Slf4j
+public class StreamingCsvParserStrategy implements CsvParserStrategy {
+
+    @Data
+    public static class Config {
+        private char delimiter = ',';
+        private char quoteChar = '"';
+        private boolean skipEmptyLines = true;
+        private int maxBufferedFieldChars = 64 * 1024;
+        private int readBufferChars = 8 * 1024;
+    }
+
+    private enum State { FIELD_START, UNQUOTED, QUOTED, QUOTE_IN_QUOTED }
+
+    private final Config cfg;
+
+    public StreamingCsvParserStrategy(Config cfg) {
+        this.cfg = cfg;
+    }
+
+    @Override
+    public long parseAndWrite(Reader inputReader, Writer outputWriter) throws Exception {
+        FieldWriter out = new FieldWriter(outputWriter);
+        char[] readBuf = new char[Math.max(1, cfg.readBufferChars)];
+        final char delimiter = cfg.delimiter;
+        final char quote = cfg.quoteChar;
+
+        State state = State.FIELD_START;
+        boolean skipLf = false;
+
+        try {
+            int n;
+            while ((n = inputReader.read(readBuf, 0, readBuf.length)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = readBuf[i];
+                    if (skipLf) {
+                        skipLf = false;
+                        if (c == '\n') continue;
+                    }
+                    switch (state) {
+                        case FIELD_START:
+                            if (c == quote) {
+                                state = State.QUOTED;
+                            } else if (c == delimiter) {
+                                out.endField();
+                            } else if (c == '\n' || c == '\r') {
+                                skipLf = c == '\r';
+                                if (out.fieldIndex > 0) {
+                                    // delimiter right before the line break: trailing empty field
+                                    out.endField();
+                                    out.endRecord();
+                                } else if (!cfg.skipEmptyLines) {
+                                    out.endRecord();
+                                }
+                            } else {
+                                out.append(c);
+                                state = State.UNQUOTED;
+                            }
+                            break;
+                        case UNQUOTED:
+                            if (c == delimiter) {
+                                out.endField();
+                                state = State.FIELD_START;
+                            } else if (c == '\n' || c == '\r') {
+                                skipLf = c == '\r';
+                                out.endField();
+                                out.endRecord();
+                                state = State.FIELD_START;
+                            } else {
+                                out.append(c);
+                            }
+                            break;
+                        case QUOTED:
+                            if (c == quote) {
+                                state = State.QUOTE_IN_QUOTED;
+                            } else {
+                                out.append(c);
+                            }
+                            break;
+                        case QUOTE_IN_QUOTED:
+                            if (c == quote) {
+                                // escaped quote inside quoted value
+                                out.append(c);
+                                state = State.QUOTED;
+                            } else if (c == delimiter) {
+                                out.endField();
+                                state = State.FIELD_START;
+                            } else if (c == '\n' || c == '\r') {
+                                skipLf = c == '\r';
+                                out.endField();
+                                out.endRecord();
+                                state = State.FIELD_START;
+                            } else {
+                                // lenient: text after a closing quote is kept as part of the value
+                                out.append(c);
+                                state = State.UNQUOTED;
+                            }
+                            break;
+                        default:
+                            throw new IllegalStateException("Unexpected state " + state);
+                    }
+                }
+            }
+
+            // flush the last record if the input does not end with a line break
+            if (state != State.FIELD_START || out.fieldIndex > 0) {
+                if (state == State.QUOTED) {
+                    log.warn("Unterminated quoted value at end of input (record {})", out.records + 1);
+                }
+                out.endField();
+                out.endRecord();
+            }
+        } finally {
+            outputWriter.flush();
+        }
+        if (out.largeFields > 0) {
+            log.info("streaming wrote {} fields larger than {} chars without buffering them", out.largeFields, cfg.maxBufferedFieldChars);
+        }
+        return out.records;
+    }
+
+    /**
+     * Bounded per-field buffer that decides quoting for small fields and streams
+     * oversized fields straight through to the Writer.
+     */
+    private final class FieldWriter {
+        private final Writer writer;
+        private final char[] buf;
+        private int len = 0;
+        private boolean needsQuote = false;
+        private boolean streaming = false;
+        private int fieldIndex = 0;
+        private long records = 0;
+        private long largeFields = 0;
+
+        FieldWriter(Writer writer) {
+            this.writer = writer;
+            this.buf = new char[Math.max(1, cfg.maxBufferedFieldChars)];
+        }
+
+        void append(char c) throws IOException {
+            if (len == buf.length) {
+                spill();
+            }
+            buf[len++] = c;
+            if (c == cfg.quoteChar || c == cfg.delimiter || c == '\n' || c == '\r') {
+                needsQuote = true;
+            }
+        }
+
+        private void spill() throws IOException {
+            if (!streaming) {
+                // the field no longer fits: commit to quoting it and stream from here on
+                if (fieldIndex > 0) writer.write(cfg.delimiter);
+                writer.write(cfg.quoteChar);
+                streaming = true;
+            }
+            writeEscaped();
+            len = 0;
+        }
+
+        void endField() throws IOException {
+            if (streaming) {
+                writeEscaped();
+                writer.write(cfg.quoteChar);
+                largeFields++;
+            } else {
+                if (fieldIndex > 0) writer.write(cfg.delimiter);
+                if (needsQuote) {
+                    writer.write(cfg.quoteChar);
+                    writeEscaped();
+                    writer.write(cfg.quoteChar);
+                } else {
+                    writer.write(buf, 0, len);
+                }
+            }
+            len = 0;
+            needsQuote = false;
+            streaming = false;
+            fieldIndex++;
+        }
+
+        void endRecord() throws IOException {
+            writer.write('\n');
+            fieldIndex = 0;
+            records++;
+            if ((records % 100_000) == 0) {
+                log.info("streaming parsed {} rows", records);
+                writer.flush();
+            }
+        }
+
+        private void writeEscaped() throws IOException {
+            int start = 0;
+            for (int i = 0; i < len; i++) {
+                if (buf[i] == cfg.quoteChar) {
+                    writer.write(buf, start, i - start + 1);
+                    writer.write(cfg.quoteChar);
+                    start = i + 1;
+                }
+            }
+            if (start < len) {
+                writer.write(buf, start, len - start);
+            }
+        }
+    }
+}
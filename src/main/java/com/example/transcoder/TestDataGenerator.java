@@ -1,63 +1,512 @@
 package com.example.transcoder;
 
-import com.ibm.icu.text.CharsetDetector;
-import com.ibm.icu.text.CharsetMatch;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.io.File;
 import java.nio.charset.Charset;
-import java.util.Random;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Test data generator to create large CSV files for performance testing.
+ * Test data generator to create large CSV / fixed-width files for performance testing.
  *
  * Usage example:
  *   java -cp ... com.example.transcoder.TestDataGenerator output.csv 1024 1000000 UTF-8
+ *   java -cp ... com.example.transcoder.TestDataGenerator out.ebc 200 50000000 IBM1388 threads=8 seed=42 types=id,int,decimal,date,text,cjk quoteRatio=0.05 longFieldRatio=0.0001
  *
- * Generates 1,000,000 rows of sample data; each row has a mix of ascii and CJK text.
+ * Rows are generated in fixed-size blocks on a thread pool. Each block gets its own
+ * random stream derived from (seed, blockIndex), so the output is byte-identical for
+ * the same seed and options no matter how many threads are used. Characters are
+ * pre-encoded once per charset and copied as bytes; no String is built per row.
+ * Finished blocks are copied in order into a ChunkedMappedOutputStream.
+ *
+ * For stateful EBCDIC DBCS codepages (IBM935, IBM1388, ...) cjk columns contain true
+ * mixed-byte content: runs of double-byte characters wrapped in SO (0x0E) / SI (0x0F).
  */
 @Slf4j
 public class TestDataGenerator {
+
+    public enum ColumnType {
+        // minimum fixed-width size in characters, so generated values are never cut off
+        ID(19),      // Long.MAX_VALUE
+        INT(10),     // sign + 9 digits
+        DECIMAL(12), // sign + 8 digits + '.' + 2 digits
+        DATE(10),    // yyyy-MM-dd
+        TEXT(1),
+        CJK(1);
+
+        final int minFixedChars;
+
+        ColumnType(int minFixedChars) {
+            this.minFixedChars = minFixedChars;
+        }
+    }
+
+    @Data
+    public static class Config {
+        private File outputFile;
+        private int rowSize = 200;          // approx bytes per row; exact record length in fixed-width mode
+        private long numRows;
+        private String encoding = "UTF-8";
+        private long seed = 12345L;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private String types = "id,int,decimal,date,text,cjk";
+        private int columns = 0;            // 0 = one column per entry in types, otherwise types are cycled
+        private double quoteRatio = 0.05;   // text fields containing quote + delimiter (written quoted)
+        private double newlineRatio = 0.01; // text fields containing an embedded newline (written quoted)
+        private double longFieldRatio = 0.0;
+        private int longFieldChars = 1024 * 1024;
+        private boolean fixedWidth = false;
+        private boolean fixedNewline = true; // terminate fixed-width records with a newline
+        private String widths;               // fixed-width bytes per column, e.g. "19,10,40"; default: even split
+        private char delimiter = ',';
+        private char quoteChar = '"';
+        private int rowsPerBlock = 16 * 1024;
+        private long chunkSize = 256L * 1024 * 1024;
+    }
+
+    private static final byte SO = 0x0E;
+    private static final byte SI = 0x0F;
+
+    private static final char[] ALNUM = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    // common simplified Chinese characters; filtered per charset at startup
+    private static final String CJK_POOL =
+            "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说产种面而方后多定"
+            + "行学法所民得经十三之进着等部度家电力里如水化高自二理起小物现实加量都两体制机当使点从业本去把性好应开它合还因由其"
+            + "些然前外天政四日那社义事平形相全表间样与关各重新线内数正心反你明看原又么利比或但质气第向道命此变条只没结解问意建"
+            + "月公无系军很情者最立代想已通并提直题党程展五果料象员革位入常文总次品式活设及管特件长求老头基资边流路级少图山统接"
+            + "知较将组见计别她手角期根论运农指几九区强放决西被干做必战先回则任取据处府研测试汉字";
+
     public static void main(String[] args) throws Exception {
         if (args.length < 4) {
-            System.out.println("Usage: TestDataGenerator <outputFile> <rowSizeApproxBytes> <numRows> <encoding>");
+            System.out.println("Usage: TestDataGenerator <outputFile> <rowSizeApproxBytes> <numRows> <encoding> [key=value ...]");
+            System.out.println("Options: seed threads types columns quoteRatio newlineRatio longFieldRatio longFieldChars");
+            System.out.println("         fixedWidth fixedNewline widths delimiter quoteChar rowsPerBlock chunkSize");
             System.out.println("Example: TestDataGenerator /tmp/test.csv 200 500000 UTF-8");
+            System.out.println("Example: TestDataGenerator /tmp/test.ebc 200 500000 IBM935 seed=7 types=id,cjk,text longFieldRatio=0.001");
+            System.out.println("Example: TestDataGenerator /tmp/test.dat 80 500000 IBM1388 fixedWidth=true fixedNewline=false types=id,decimal,cjk,date widths=19,12,39,10");
             return;
         }
-        File out = new File(args[0]);
-        int rowSize = Integer.parseInt(args[1]);
-        long numRows = Long.parseLong(args[2]);
-        String encoding = args[3];
+        Config cfg = new Config();
+        cfg.setOutputFile(new File(args[0]));
+        cfg.setRowSize(Integer.parseInt(args[1]));
+        cfg.setNumRows(Long.parseLong(args[2]));
+        cfg.setEncoding(args[3]);
+        for (int i = 4; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Expected key=value, got: " + args[i]);
+            applyOption(cfg, args[i].substring(0, eq), args[i].substring(eq + 1));
+        }
+        generate(cfg);
+    }
+
+    private static void applyOption(Config cfg, String key, String value) {
+        switch (key) {
+            case "seed": cfg.setSeed(Long.parseLong(value)); break;
+            case "threads": cfg.setThreads(Integer.parseInt(value)); break;
+            case "types": cfg.setTypes(value); break;
+            case "columns": cfg.setColumns(Integer.parseInt(value)); break;
+            case "quoteRatio": cfg.setQuoteRatio(Double.parseDouble(value)); break;
+            case "newlineRatio": cfg.setNewlineRatio(Double.parseDouble(value)); break;
+            case "longFieldRatio": cfg.setLongFieldRatio(Double.parseDouble(value)); break;
+            case "longFieldChars": cfg.setLongFieldChars(Integer.parseInt(value)); break;
+            case "fixedWidth": cfg.setFixedWidth(Boolean.parseBoolean(value)); break;
+            case "fixedNewline": cfg.setFixedNewline(Boolean.parseBoolean(value)); break;
+            case "widths": cfg.setWidths(value); break;
+            case "delimiter": cfg.setDelimiter(value.charAt(0)); break;
+            case "quoteChar": cfg.setQuoteChar(value.charAt(0)); break;
+            case "rowsPerBlock": cfg.setRowsPerBlock(Integer.parseInt(value)); break;
+            case "chunkSize": cfg.setChunkSize(Long.parseLong(value)); break;
+            default: throw new IllegalArgumentException("Unknown option: " + key);
+        }
+    }
 
-        Charset cs = Charset.forName(encoding);
+    /**
+     * Generate the file described by cfg.
+     *
+     * @return number of bytes written
+     */
+    public static long generate(Config cfg) throws Exception {
+        Layout layout = new Layout(cfg, new Glyphs(Charset.forName(cfg.getEncoding())));
+        int rowsPerBlock = Math.max(1, cfg.getRowsPerBlock());
+        long blocks = (cfg.getNumRows() + rowsPerBlock - 1) / rowsPerBlock;
+        int threads = Math.max(1, cfg.getThreads());
 
-        try (FileOutputStream fos = new FileOutputStream(out);
-             BufferedOutputStream bos = new BufferedOutputStream(fos)) {
-            Random rnd = new Random(12345);
-            String[] sample = new String[]{
-                    "alpha", "beta", "gamma", "δelta", "数据", "测试", "漢字", "行内\n换行", "含,逗号", "\"quote\""
-            };
+        // two buffers per thread: one being filled, one waiting to be copied out
+        ArrayDeque<BlockBuffer> free = new ArrayDeque<>();
+        for (int i = 0; i < threads * 2; i++) free.add(new BlockBuffer(layout));
+        ArrayDeque<Future<BlockBuffer>> pending = new ArrayDeque<>();
 
-            for (long i = 0; i < numRows; i++) {
-                // construct a row with multiple columns
-                StringBuilder sb = new StringBuilder();
-                sb.append(i).append(',');
-                int target = rowSize - 20;
-                while (sb.length() < target) {
-                    sb.append(sample[(int) (rnd.nextInt(sample.length))]).append(',');
+        long start = System.currentTimeMillis();
+        long bytes = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (ChunkedMappedOutputStream out = new ChunkedMappedOutputStream(cfg.getOutputFile(), cfg.getChunkSize())) {
+            for (long b = 0; b < blocks; b++) {
+                if (free.isEmpty()) {
+                    bytes += drain(pending.poll(), out, free);
                 }
-                sb.append("end").append('\n');
-                byte[] bytes = sb.toString().getBytes(cs);
-                bos.write(bytes);
-                if ((i & 0xFFFF) == 0) {
-                    log.info("Generated {} rows", i);
-                    bos.flush();
+                BlockBuffer buf = free.poll();
+                long block = b;
+                long firstRow = b * rowsPerBlock;
+                long endRow = Math.min(cfg.getNumRows(), firstRow + rowsPerBlock);
+                pending.add(pool.submit(() -> buf.fill(block, firstRow, endRow)));
+                if ((b & 0x3F) == 0 && b > 0) {
+                    log.info("Generated {} rows", firstRow);
                 }
             }
-            bos.flush();
+            while (!pending.isEmpty()) {
+                bytes += drain(pending.poll(), out, free);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        long end = System.currentTimeMillis();
+        log.info("Wrote test file {} rows={}, bytes={}, encoding={}, seed={}, time(s)={}",
+                cfg.getOutputFile().getAbsolutePath(), cfg.getNumRows(), bytes, cfg.getEncoding(), cfg.getSeed(), (end - start) / 1000.0);
+        return bytes;
+    }
+
+    private static long drain(Future<BlockBuffer> f, ChunkedMappedOutputStream out, ArrayDeque<BlockBuffer> free) throws Exception {
+        BlockBuffer buf = f.get();
+        out.write(buf.buf, 0, buf.len);
+        free.add(buf);
+        return buf.len;
+    }
+
+    /**
+     * Characters pre-encoded in the target charset. For stateful DBCS codepages the CJK
+     * codes are stored without their SO/SI wrapper; BlockBuffer tracks the shift state.
+     */
+    static final class Glyphs {
+        final byte[][] ascii = new byte[128][];
+        final byte[][] cjk;
+        final boolean stateful;
+
+        Glyphs(Charset cs) {
+            CharsetEncoder enc = cs.newEncoder();
+            for (char c = 0; c < 128; c++) {
+                if (enc.canEncode(c)) {
+                    ascii[c] = String.valueOf(c).getBytes(cs);
+                }
+            }
+            List<byte[]> codes = new ArrayList<>();
+            boolean shifted = false;
+            for (int i = 0; i < CJK_POOL.length(); i++) {
+                char c = CJK_POOL.charAt(i);
+                if (!enc.canEncode(c)) continue;
+                byte[] b = String.valueOf(c).getBytes(cs);
+                if (b.length == 4 && b[0] == SO && b[3] == SI) {
+                    shifted = true;
+                    b = Arrays.copyOfRange(b, 1, 3);
+                }
+                codes.add(b);
+            }
+            this.cjk = codes.toArray(new byte[0][]);
+            this.stateful = shifted;
+            if (cjk.length == 0) {
+                log.warn("Charset {} has no CJK characters; cjk columns will contain ASCII only", cs.name());
+            }
+        }
+
+        void require(char c) {
+            if (c >= 128 || ascii[c] == null) {
+                throw new IllegalArgumentException("Character 0x" + Integer.toHexString(c) + " is not encodable as required by the layout");
+            }
+        }
+    }
+
+    /**
+     * Immutable per-run layout shared by all BlockBuffers.
+     */
+    static final class Layout {
+        final Config cfg;
+        final Glyphs glyphs;
+        final ColumnType[] columns;
+        final int[] widths;       // fixed-width mode only
+        final int avgTextChars;   // chars per text field, sized so the row lands near rowSize bytes
+        final int avgCjkChars;    // same for cjk fields, whose chars encode wider
+
+        Layout(Config cfg, Glyphs glyphs) {
+            this.cfg = cfg;
+            this.glyphs = glyphs;
+            String[] names = cfg.getTypes().split(",");
+            int n = cfg.getColumns() > 0 ? cfg.getColumns() : names.length;
+            columns = new ColumnType[n];
+            int textCols = 0;
+            for (int i = 0; i < n; i++) {
+                columns[i] = ColumnType.valueOf(names[i % names.length].trim().toUpperCase(Locale.ROOT));
+                if (columns[i] == ColumnType.TEXT || columns[i] == ColumnType.CJK) textCols++;
+            }
+            for (char c : "0123456789-. \n".toCharArray()) glyphs.require(c);
+            for (char c : ALNUM) glyphs.require(c);
+
+            // numeric / date columns average roughly 10 bytes each, plus one delimiter per column
+            double textBudget = Math.max(1, cfg.getRowSize() - (n - textCols) * 10 - n) / (double) Math.max(1, textCols);
+            double asciiBytes = 0;
+            for (char c : ALNUM) asciiBytes += glyphs.ascii[c].length;
+            asciiBytes /= ALNUM.length;
+            avgTextChars = Math.max(1, (int) Math.round(textBudget / asciiBytes));
+            if (glyphs.cjk.length == 0) {
+                avgCjkChars = avgTextChars;
+            } else {
+                double cjkBytes = 0;
+                for (byte[] b : glyphs.cjk) cjkBytes += b.length;
+                cjkBytes /= glyphs.cjk.length;
+                // BlockBuffer.text alternates single- and double-byte runs of 1..8 chars (mean 4.5),
+                // and each double-byte run costs SO + SI on stateful codepages
+                double perChar = (asciiBytes + cjkBytes) / 2 + (glyphs.stateful ? 2.0 / 9 : 0);
+                avgCjkChars = Math.max(1, (int) Math.round(textBudget / perChar));
+            }
+            widths = new int[n];
+            if (cfg.isFixedWidth()) {
+                if (glyphs.ascii[' '].length != 1) {
+                    throw new IllegalArgumentException("Fixed-width layout needs a single-byte space in " + cfg.getEncoding());
+                }
+                int body = cfg.getRowSize() - (cfg.isFixedNewline() ? glyphs.ascii['\n'].length : 0);
+                if (body < n) {
+                    throw new IllegalArgumentException("rowSize " + cfg.getRowSize() + " too small for " + n + " fixed-width columns");
+                }
+                if (cfg.getWidths() != null && !cfg.getWidths().isEmpty()) {
+                    String[] w = cfg.getWidths().split(",");
+                    if (w.length != n) {
+                        throw new IllegalArgumentException("widths has " + w.length + " entries but the layout has " + n + " columns");
+                    }
+                    int sum = 0;
+                    for (int i = 0; i < n; i++) {
+                        widths[i] = Integer.parseInt(w[i].trim());
+                        sum += widths[i];
+                    }
+                    if (sum != body) {
+                        throw new IllegalArgumentException("widths sum to " + sum + " bytes but the record body is " + body
+                                + " (rowSize " + cfg.getRowSize() + (cfg.isFixedNewline() ? " minus newline)" : ")"));
+                    }
+                } else {
+                    Arrays.fill(widths, body / n);
+                    widths[n - 1] += body % n;
+                }
+                int digitBytes = glyphs.ascii['0'].length;
+                for (int i = 0; i < n; i++) {
+                    int min = columns[i].minFixedChars * digitBytes;
+                    if (widths[i] < min) {
+                        throw new IllegalArgumentException("Fixed-width column " + (i + 1) + " (" + columns[i] + ") is "
+                                + widths[i] + " bytes wide, needs at least " + min);
+                    }
+                }
+            } else {
+                glyphs.require(cfg.getDelimiter());
+                glyphs.require(cfg.getQuoteChar());
+            }
+        }
+    }
+
+    /**
+     * Reusable growable byte buffer that one worker fills with a block of rows.
+     */
+    static final class BlockBuffer {
+        private final Layout layout;
+        private final Config cfg;
+        private final Glyphs g;
+        private final char[] digits = new char[20];
+        byte[] buf = new byte[64 * 1024];
+        int len;
+        private boolean shifted;
+        private int fieldEnd = Integer.MAX_VALUE;
+
+        BlockBuffer(Layout layout) {
+            this.layout = layout;
+            this.cfg = layout.cfg;
+            this.g = layout.glyphs;
+        }
+
+        BlockBuffer fill(long block, long firstRow, long endRow) {
+            len = 0;
+            shifted = false;
+            SplittableRandom rnd = new SplittableRandom(blockSeed(cfg.getSeed(), block));
+            for (long row = firstRow; row < endRow; row++) {
+                if (cfg.isFixedWidth()) {
+                    fixedRow(row, rnd);
+                } else {
+                    csvRow(row, rnd);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Seeds must be mixed: SplittableRandom streams whose seeds differ by multiples of its
+         * internal gamma are just shifted copies of each other.
+         */
+        private static long blockSeed(long seed, long block) {
+            long z = seed + (block + 1) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+
+        private void csvRow(long row, SplittableRandom rnd) {
+            ColumnType[] cols = layout.columns;
+            for (int i = 0; i < cols.length; i++) {
+                if (i > 0) ascii(cfg.getDelimiter());
+                field(cols[i], row, rnd, false);
+            }
+            ascii('\n');
+        }
+
+        private void fixedRow(long row, SplittableRandom rnd) {
+            ColumnType[] cols = layout.columns;
+            for (int i = 0; i < cols.length; i++) {
+                int fieldStart = len;
+                fieldEnd = fieldStart + layout.widths[i];
+                field(cols[i], row, rnd, true);
+                endShift();
+                while (len < fieldEnd) put(g.ascii[' ']);
+                fieldEnd = Integer.MAX_VALUE;
+            }
+            if (cfg.isFixedNewline()) ascii('\n');
+        }
+
+        private void field(ColumnType type, long row, SplittableRandom rnd, boolean fixed) {
+            switch (type) {
+                case ID:
+                    number(row, 0);
+                    break;
+                case INT:
+                    if (rnd.nextInt(10) == 0) ascii('-');
+                    number(rnd.nextInt(1_000_000_000), 0);
+                    break;
+                case DECIMAL: {
+                    long cents = rnd.nextLong(10_000_000_000L);
+                    if (rnd.nextInt(10) == 0) ascii('-');
+                    number(cents / 100, 0);
+                    ascii('.');
+                    number(cents % 100, 2);
+                    break;
+                }
+                case DATE:
+                    number(1970 + rnd.nextInt(60), 4);
+                    ascii('-');
+                    number(1 + rnd.nextInt(12), 2);
+                    ascii('-');
+                    number(1 + rnd.nextInt(28), 2);
+                    break;
+                case TEXT:
+                case CJK:
+                    text(type == ColumnType.CJK && g.cjk.length > 0, rnd, fixed);
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected column type " + type);
+            }
+        }
+
+        private void text(boolean cjk, SplittableRandom rnd, boolean fixed) {
+            int avg = cjk ? layout.avgCjkChars : layout.avgTextChars;
+            int n = avg / 2 + rnd.nextInt(avg + 1);
+            int quotePos = -1, newlinePos = -1;
+            if (!fixed) {
+                if (cfg.getLongFieldRatio() > 0 && rnd.nextDouble() < cfg.getLongFieldRatio()) {
+                    n = cfg.getLongFieldChars();
+                }
+                if (rnd.nextDouble() < cfg.getQuoteRatio()) quotePos = rnd.nextInt(n + 1);
+                if (rnd.nextDouble() < cfg.getNewlineRatio()) newlinePos = rnd.nextInt(n + 1);
+            }
+            boolean quoted = quotePos >= 0 || newlinePos >= 0;
+            if (quoted) ascii(cfg.getQuoteChar());
+
+            boolean cjkRun = false;
+            int runLeft = 0;
+            for (int k = 0; k <= n; k++) {
+                if (k == quotePos) {
+                    // escaped quote followed by a delimiter inside the value
+                    ascii(cfg.getQuoteChar());
+                    ascii(cfg.getQuoteChar());
+                    ascii(cfg.getDelimiter());
+                }
+                if (k == newlinePos) ascii('\n');
+                if (k == n) break;
+
+                boolean fits;
+                if (cjk) {
+                    // alternate runs of single- and double-byte characters to exercise SO/SI switching
+                    if (runLeft == 0) {
+                        cjkRun = !cjkRun;
+                        runLeft = 1 + rnd.nextInt(8);
+                    }
+                    runLeft--;
+                    fits = cjkRun ? cjk(rnd.nextInt(g.cjk.length)) : ascii(ALNUM[rnd.nextInt(ALNUM.length)]);
+                } else {
+                    fits = ascii(ALNUM[rnd.nextInt(ALNUM.length)]);
+                }
+                if (!fits) break;
+            }
+            if (quoted) ascii(cfg.getQuoteChar());
+        }
+
+        /** Zero-padded to minDigits; non-negative values only. */
+        private void number(long v, int minDigits) {
+            int p = digits.length;
+            do {
+                digits[--p] = (char) ('0' + (v % 10));
+                v /= 10;
+            } while (v > 0);
+            while (digits.length - p < minDigits) digits[--p] = '0';
+            for (; p < digits.length; p++) {
+                if (!ascii(digits[p])) return;
+            }
+        }
+
+        /** @return false if the character does not fit the current fixed-width field */
+        private boolean ascii(char c) {
+            byte[] b = g.ascii[c];
+            int need = b.length + (shifted ? 1 : 0);
+            if (len + need > fieldEnd) return false;
+            endShift();
+            put(b);
+            return true;
+        }
+
+        /** @return false if the character (plus closing SI) does not fit the current fixed-width field */
+        private boolean cjk(int idx) {
+            byte[] b = g.cjk[idx];
+            int need = b.length + (g.stateful ? (shifted ? 1 : 2) : 0);
+            if (len + need > fieldEnd) return false;
+            if (g.stateful && !shifted) {
+                put(SO);
+                shifted = true;
+            }
+            put(b);
+            return true;
+        }
+
+        private void endShift() {
+            if (shifted) {
+                put(SI);
+                shifted = false;
+            }
+        }
+
+        private void put(byte b) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[len++] = b;
+        }
+
+        private void put(byte[] b) {
+            if (b.length == 1) {
+                put(b[0]);
+                return;
+            }
+            if (len + b.length > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + b.length));
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
         }
-        log.info("Wrote test file {} rows={}, encoding={}", out.getAbsolutePath(), numRows, encoding);
     }
-}
\ No newline at end of file
+}
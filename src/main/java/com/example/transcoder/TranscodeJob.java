@@ -0,0 +1,108 @@
+package com.example.transcoder;
+
+import lombok.Getter;
+
+/**
+ * A transcode job submitted to TranscoderServer, with its status and per-job metrics.
+ */
+@Getter
+public class TranscodeJob {
+
+    public enum Status { QUEUED, RUNNING, SUCCEEDED, FAILED }
+
+    private final long id;
+    private final TranscoderMain.Options options;
+    private final long submittedAt = System.currentTimeMillis();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile long records;
+    private volatile long inputBytes;
+    private volatile long outputBytes;
+    private volatile long mappedBytes;
+    private volatile String error;
+
+    public TranscodeJob(long id, TranscoderMain.Options options) {
+        this.id = id;
+        this.options = options;
+    }
+
+    void started(long mappedBytes) {
+        this.mappedBytes = mappedBytes;
+        this.inputBytes = options.getInputFile().length();
+        this.startedAt = System.currentTimeMillis();
+        this.status = Status.RUNNING;
+    }
+
+    void succeeded(long records) {
+        this.records = records;
+        this.outputBytes = options.getOutputFile().length();
+        this.finishedAt = System.currentTimeMillis();
+        this.status = Status.SUCCEEDED;
+    }
+
+    void failed(Throwable t) {
+        this.error = t.getClass().getSimpleName() + ": " + t.getMessage();
+        this.finishedAt = System.currentTimeMillis();
+        this.status = Status.FAILED;
+    }
+
+    /** Time spent waiting for resource permits, in ms. */
+    public long getQueuedMillis() {
+        long start = startedAt > 0 ? startedAt : System.currentTimeMillis();
+        return start - submittedAt;
+    }
+
+    /** Transcode time so far (or total once finished), in ms. */
+    public long getRunMillis() {
+        if (startedAt == 0) return 0;
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        return end - startedAt;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append('{');
+        sb.append("\"id\":").append(id);
+        sb.append(",\"status\":\"").append(status).append('"');
+        sb.append(",\"input\":").append(quote(options.getInputFile().getPath()));
+        sb.append(",\"inputCharset\":").append(quote(options.getInputCharset()));
+        sb.append(",\"output\":").append(quote(options.getOutputFile().getPath()));
+        sb.append(",\"outputCharset\":").append(quote(options.getOutputCharset()));
+        sb.append(",\"parser\":").append(quote(options.getParser()));
+        sb.append(",\"queuedMillis\":").append(getQueuedMillis());
+        sb.append(",\"runMillis\":").append(getRunMillis());
+        sb.append(",\"records\":").append(records);
+        sb.append(",\"inputBytes\":").append(inputBytes);
+        sb.append(",\"outputBytes\":").append(outputBytes);
+        sb.append(",\"mappedBytes\":").append(mappedBytes);
+        if (error != null) sb.append(",\"error\":").append(quote(error));
+        sb.append('}');
+        return sb.toString();
+    }
+
+    static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+        return sb.toString();
+    }
+}
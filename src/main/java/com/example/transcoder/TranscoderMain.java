@@ -9,6 +9,8 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Main orchestrator for transcoding CSV files using memory-mapped IO and ICU4J (via Charset).
@@ -19,6 +21,8 @@ import java.util.Locale;
 @Slf4j
 public class TranscoderMain {
 
+    private static final Map<String, Charset> CHARSET_CACHE = new ConcurrentHashMap<>();
+
     @Data
     public static class Options {
         private File inputFile;
@@ -26,14 +30,15 @@ public class TranscoderMain {
         private File outputFile;
         private String outputCharset = "UTF-8";
         private long chunkSize = 1L * 1024 * 1024 * 1024; // 1GB default
-        private String parser = "univocity"; // or "commons"
+        private String parser = "univocity"; // or "commons" / "streaming"
         private char delimiter = ',';
         private char quoteChar = '"';
+        private int maxBufferedFieldChars = 64 * 1024; // streaming parser only
     }
 
     public static void main(String[] args) throws Exception {
         if (args.length < 4) {
-            System.out.println("Usage: java -jar ebcdic-csv-transcoder.jar <inputFile> <inputCharset> <outputFile> <outputCharset> [parser=univocity|commons] [chunkSizeBytes] [delimiter] [quoteChar]");
+            System.out.println("Usage: java -jar ebcdic-csv-transcoder.jar <inputFile> <inputCharset> <outputFile> <outputCharset> [parser=univocity|commons|streaming] [chunkSizeBytes] [delimiter] [quoteChar] [maxBufferedFieldChars]");
             System.out.println("Example: java -jar ... input.csv IBM1388 output.csv UTF-8 univocity 1073741824 , \"");
             return;
         }
@@ -46,9 +51,20 @@ public class TranscoderMain {
         if (args.length > 5) options.setChunkSize(Long.parseLong(args[5]));
         if (args.length > 6) options.setDelimiter(args[6].charAt(0));
         if (args.length > 7) options.setQuoteChar(args[7].charAt(0));
+        if (args.length > 8) options.setMaxBufferedFieldChars(Integer.parseInt(args[8]));
 
         log.info("Options: {}", options);
 
+        transcode(options);
+    }
+
+    /**
+     * Run a single transcode job. Used by main() and by TranscoderServer, which calls it
+     * repeatedly inside one JVM.
+     *
+     * @return number of records written
+     */
+    public static long transcode(Options options) throws Exception {
         Charset inCharset = resolveCharset(options.getInputCharset());
         Charset outCharset = resolveCharset(options.getOutputCharset());
 
@@ -64,6 +80,13 @@ public class TranscoderMain {
                 ccfg.setDelimiter(options.getDelimiter());
                 ccfg.setQuoteChar(options.getQuoteChar());
                 parserStrategy = new CommonsCsvParserStrategy(ccfg);
+            } else if ("streaming".equalsIgnoreCase(options.getParser())) {
+                // large-field mode: fields are never fully materialized, heap use stays bounded
+                StreamingCsvParserStrategy.Config scfg = new StreamingCsvParserStrategy.Config();
+                scfg.setDelimiter(options.getDelimiter());
+                scfg.setQuoteChar(options.getQuoteChar());
+                scfg.setMaxBufferedFieldChars(options.getMaxBufferedFieldChars());
+                parserStrategy = new StreamingCsvParserStrategy(scfg);
             } else {
                 UniVocityCsvParserStrategy.Config ucfg = new UniVocityCsvParserStrategy.Config();
                 ucfg.setDelimiter(options.getDelimiter());
@@ -76,6 +99,7 @@ public class TranscoderMain {
             writer.flush();
             long end = System.currentTimeMillis();
             log.info("Completed. Records: {}, Time(s): {}, RPS: {}", records, (end - start)/1000.0, records / Math.max(1, (end - start)/1000));
+            return records;
         } catch (Throwable t) {
             log.error("Transcoding failed: {}", t.getMessage(), t);
             // Attempt cleanup
@@ -87,13 +111,24 @@ public class TranscoderMain {
     /**
      * Resolve charset via ICU4J (if available) or fallback to standard Charset.
      * Also contains a small alias map for some EBCDIC names.
+     * Only exact matches are cached; alias guesses and fallbacks are redone (and reported)
+     * on every call so a mistyped name never sticks to the wrong codepage.
      */
-    private static Charset resolveCharset(String name) {
+    static Charset resolveCharset(String name) {
         if (name == null || name.isEmpty()) return Charset.defaultCharset();
         String n = name.trim();
+        Charset cached = CHARSET_CACHE.get(n);
+        if (cached != null) return cached;
         try {
-            return Charset.forName(n);
+            Charset cs = Charset.forName(n);
+            CHARSET_CACHE.putIfAbsent(n, cs);
+            return cs;
         } catch (Exception ignored) {}
+        return lookupCharset(n);
+    }
+
+    private static Charset lookupCharset(String name) {
+        String n = name;
 
         String digits = n.replaceAll("\\D+", "");
         List<String> candidates = new ArrayList<>();
@@ -0,0 +1,581 @@
+package com.example.transcoder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running local job server, so an orchestrator can submit many transcodes to one
+ * warm JVM (JIT-compiled parsers, cached charsets) instead of launching TranscoderMain per job.
+ *
+ * Listens on localhost only. Every request must carry "Authorization: Bearer <token>", where the
+ * token is read from (or generated into) an owner-only tokenFile; requests with an Origin header
+ * or a non-loopback Host header are rejected so browser pages cannot reach the server.
+ * Inputs and outputs must lie under the configured inputRoot / outputRoot directories, and an
+ * existing output is only replaced when the job passes overwrite=true.
+ *
+ * Jobs run on virtual threads when the JVM supports them (JDK 21+),
+ * otherwise on a cached platform thread pool. Global limits cap concurrently running jobs
+ * (CPU workers), total mapped bytes and open files; a job waits until it gets all three.
+ *
+ * Endpoints:
+ *   POST /jobs?input=..&inputCharset=..&output=..[&outputCharset=..&parser=..&chunkSize=..
+ *        &delimiter=..&quoteChar=..&maxBufferedFieldChars=..&overwrite=true]
+ *        (params may also be an application/x-www-form-urlencoded body)
+ *   GET  /jobs          all retained jobs
+ *   GET  /jobs/{id}     status and metrics of one job
+ *   GET  /metrics       server-wide counters and free permits
+ *
+ * Usage example:
+ *   java -cp ... com.example.transcoder.TranscoderServer 8085 8 8589934592 64 inputRoot=/data/in outputRoot=/data/out
+ *   curl -H "Authorization: Bearer $(cat ~/.transcoder-server.token)" -X POST 'http://localhost:8085/jobs?input=/data/in/a.csv&inputCharset=IBM1388&output=/data/out/a.csv'
+ */
+@Slf4j
+public class TranscoderServer {
+
+    @Data
+    public static class Config {
+        private int maxCpuWorkers = Runtime.getRuntime().availableProcessors();
+        private long maxMappedBytes = 8L * 1024 * MB;
+        private int maxOpenFiles = 64;
+        private File tokenFile = new File(System.getProperty("user.home"), ".transcoder-server.token");
+        private List<File> inputRoots = new ArrayList<>();
+        private List<File> outputRoots = new ArrayList<>();
+    }
+
+    private static final long MB = 1024L * 1024;
+    // each job holds its input and output file open
+    private static final int FILES_PER_JOB = 2;
+    private static final int MAX_RETAINED_JOBS = 10_000;
+    private static final Set<String> PARSERS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList("univocity", "commons", "streaming")));
+
+    private final int maxCpuWorkers;
+    private final long maxMappedBytes;
+    private final int maxOpenFiles;
+    private final int mappedBudgetMb;
+    private final byte[] token;
+    private final List<Path> inputRoots = new ArrayList<>();
+    private final List<Path> outputRoots = new ArrayList<>();
+
+    private final Semaphore cpuPermits;
+    private final Semaphore mappedMbPermits;
+    private final Semaphore filePermits;
+
+    private final ExecutorService jobExecutor;
+    private final Map<Long, TranscodeJob> jobs = new ConcurrentSkipListMap<>();
+    // canonical paths used by QUEUED/RUNNING jobs; outputs are exclusive, inputs are reference counted
+    private final Map<String, Long> activeOutputs = new HashMap<>();
+    private final Map<String, Integer> activeInputs = new HashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong recordsTotal = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
+
+    private HttpServer http;
+    private ExecutorService httpExecutor;
+
+    public TranscoderServer(Config cfg) throws IOException {
+        if (cfg.getInputRoots().isEmpty() || cfg.getOutputRoots().isEmpty()) {
+            throw new IllegalArgumentException("At least one inputRoot and one outputRoot must be configured");
+        }
+        for (File f : cfg.getInputRoots()) inputRoots.add(f.getCanonicalFile().toPath());
+        for (File f : cfg.getOutputRoots()) outputRoots.add(f.getCanonicalFile().toPath());
+        this.token = loadOrCreateToken(cfg.getTokenFile().toPath()).getBytes(StandardCharsets.UTF_8);
+        this.maxCpuWorkers = cfg.getMaxCpuWorkers();
+        this.maxMappedBytes = cfg.getMaxMappedBytes();
+        this.maxOpenFiles = Math.max(FILES_PER_JOB, cfg.getMaxOpenFiles());
+        this.cpuPermits = new Semaphore(this.maxCpuWorkers, true);
+        if (maxMappedBytes < MB) {
+            throw new IllegalArgumentException("maxMappedBytes must be at least " + MB + ", got " + maxMappedBytes);
+        }
+        // round the budget down so we never map more than maxMappedBytes
+        this.mappedBudgetMb = (int) Math.min(Integer.MAX_VALUE, maxMappedBytes / MB);
+        this.mappedMbPermits = new Semaphore(mappedBudgetMb, true);
+        this.filePermits = new Semaphore(this.maxOpenFiles, true);
+        this.jobExecutor = newJobExecutor();
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Config cfg = new Config();
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (eq <= 0) {
+                positional.add(a);
+                continue;
+            }
+            String key = a.substring(0, eq);
+            String value = a.substring(eq + 1);
+            switch (key) {
+                case "inputRoot": cfg.getInputRoots().add(new File(value)); break;
+                case "outputRoot": cfg.getOutputRoots().add(new File(value)); break;
+                case "tokenFile": cfg.setTokenFile(new File(value)); break;
+                default: throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+        if (cfg.getInputRoots().isEmpty() || cfg.getOutputRoots().isEmpty()
+                || (!positional.isEmpty() && !positional.get(0).matches("\\d+"))) {
+            System.out.println("Usage: TranscoderServer [port] [maxCpuWorkers] [maxMappedBytes] [maxOpenFiles] inputRoot=<dir> outputRoot=<dir> [tokenFile=<file>]");
+            System.out.println("Example: TranscoderServer 8085 8 8589934592 64 inputRoot=/data/in outputRoot=/data/out");
+            return;
+        }
+        int port = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : 8085;
+        if (positional.size() > 1) cfg.setMaxCpuWorkers(Integer.parseInt(positional.get(1)));
+        if (positional.size() > 2) cfg.setMaxMappedBytes(Long.parseLong(positional.get(2)));
+        if (positional.size() > 3) cfg.setMaxOpenFiles(Integer.parseInt(positional.get(3)));
+
+        TranscoderServer server = new TranscoderServer(cfg);
+        server.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "transcoder-server-shutdown"));
+    }
+
+    public void start(int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/jobs", this::handleJobs);
+        http.createContext("/metrics", this::handleMetrics);
+        // request handling is cheap; the actual work is on jobExecutor
+        httpExecutor = Executors.newFixedThreadPool(2);
+        http.setExecutor(httpExecutor);
+        http.start();
+        log.info("TranscoderServer listening on {}, maxCpuWorkers={}, maxMappedBytes={}, maxOpenFiles={}, inputRoots={}, outputRoots={}",
+                http.getAddress(), maxCpuWorkers, maxMappedBytes, maxOpenFiles, inputRoots, outputRoots);
+    }
+
+    public void stop() {
+        if (http != null) {
+            http.stop(1);
+        }
+        if (httpExecutor != null) {
+            httpExecutor.shutdown();
+        }
+        jobExecutor.shutdown();
+        try {
+            if (!jobExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Jobs still running at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the output equals the input, or is already read or
+     *         written by an active job, or the input is being written by one
+     */
+    public TranscodeJob submit(TranscoderMain.Options options) throws IOException {
+        String in = options.getInputFile().getCanonicalPath();
+        String out = options.getOutputFile().getCanonicalPath();
+        TranscodeJob job;
+        synchronized (activeOutputs) {
+            if (in.equals(out)) {
+                throw new IllegalStateException("output must differ from input: " + out);
+            }
+            if (activeOutputs.containsKey(out) || activeInputs.containsKey(out)) {
+                throw new IllegalStateException("output is in use by an active job: " + out);
+            }
+            if (activeOutputs.containsKey(in)) {
+                throw new IllegalStateException("input is being written by job " + activeOutputs.get(in) + ": " + in);
+            }
+            job = new TranscodeJob(nextId.getAndIncrement(), options);
+            activeOutputs.put(out, job.getId());
+            activeInputs.merge(in, 1, Integer::sum);
+        }
+        jobs.put(job.getId(), job);
+        pruneFinishedJobs();
+        jobExecutor.execute(() -> {
+            try {
+                run(job);
+            } finally {
+                synchronized (activeOutputs) {
+                    activeOutputs.remove(out);
+                    activeInputs.computeIfPresent(in, (k, n) -> n > 1 ? n - 1 : null);
+                }
+            }
+        });
+        return job;
+    }
+
+    private void run(TranscodeJob job) {
+        TranscoderMain.Options options = job.getOptions();
+        long mappedBytes = mappedFootprint(options);
+        int mappedMb = toMb(mappedBytes);
+        if (mappedMb > mappedBudgetMb) {
+            // the input grew after submit; waiting would never succeed
+            job.failed(new IllegalStateException("job maps " + mappedBytes + " bytes, over the budget of " + mappedBudgetMb * MB));
+            failed.incrementAndGet();
+            return;
+        }
+
+        // always acquire in the same order (files, mapped, cpu) so jobs cannot deadlock each other
+        boolean files = false, mapped = false, cpu = false;
+        try {
+            filePermits.acquire(FILES_PER_JOB);
+            files = true;
+            mappedMbPermits.acquire(mappedMb);
+            mapped = true;
+            cpuPermits.acquire();
+            cpu = true;
+
+            job.started(mappedBytes);
+            log.info("Job {} started: {}", job.getId(), options);
+            long records = TranscoderMain.transcode(options);
+            job.succeeded(records);
+            succeeded.incrementAndGet();
+            recordsTotal.addAndGet(records);
+            log.info("Job {} finished: records={}, time(ms)={}", job.getId(), records, job.getRunMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.failed(e);
+            failed.incrementAndGet();
+        } catch (Throwable t) {
+            job.failed(t);
+            failed.incrementAndGet();
+            log.warn("Job {} failed: {}", job.getId(), t.getMessage());
+        } finally {
+            if (cpu) cpuPermits.release();
+            if (mapped) mappedMbPermits.release(mappedMb);
+            if (files) filePermits.release(FILES_PER_JOB);
+        }
+    }
+
+    private void pruneFinishedJobs() {
+        if (jobs.size() <= MAX_RETAINED_JOBS) return;
+        for (TranscodeJob j : jobs.values()) {
+            if (jobs.size() <= MAX_RETAINED_JOBS) break;
+            if (j.getStatus() == TranscodeJob.Status.SUCCEEDED || j.getStatus() == TranscodeJob.Status.FAILED) {
+                jobs.remove(j.getId());
+            }
+        }
+    }
+
+    private void handleJobs(HttpExchange ex) throws IOException {
+        if (!checkAccess(ex)) return;
+        try {
+            String path = ex.getRequestURI().getPath();
+            String method = ex.getRequestMethod();
+            // the context matches by prefix, so "/jobsX" also lands here
+            if (!path.equals("/jobs") && !path.startsWith("/jobs/")) {
+                respond(ex, 404, "{\"error\":\"not found\"}");
+                return;
+            }
+            if ("POST".equalsIgnoreCase(method) && ("/jobs".equals(path) || "/jobs/".equals(path))) {
+                TranscoderMain.Options options;
+                try {
+                    options = toOptions(parseParams(ex));
+                } catch (RequestException e) {
+                    respond(ex, e.status, "{\"error\":" + TranscodeJob.quote(e.getMessage()) + "}");
+                    return;
+                }
+                TranscodeJob job;
+                try {
+                    job = submit(options);
+                } catch (IllegalStateException e) {
+                    respond(ex, 409, "{\"error\":" + TranscodeJob.quote(e.getMessage()) + "}");
+                    return;
+                }
+                respond(ex, 202, job.toJson());
+            } else if ("GET".equalsIgnoreCase(method) && ("/jobs".equals(path) || "/jobs/".equals(path))) {
+                StringBuilder sb = new StringBuilder("[");
+                for (TranscodeJob j : jobs.values()) {
+                    if (sb.length() > 1) sb.append(',');
+                    sb.append(j.toJson());
+                }
+                respond(ex, 200, sb.append(']').toString());
+            } else if ("GET".equalsIgnoreCase(method) && path.startsWith("/jobs/")) {
+                TranscodeJob job = null;
+                try {
+                    job = jobs.get(Long.parseLong(path.substring("/jobs/".length())));
+                } catch (NumberFormatException ignored) {}
+                if (job == null) {
+                    respond(ex, 404, "{\"error\":\"no such job\"}");
+                } else {
+                    respond(ex, 200, job.toJson());
+                }
+            } else {
+                respond(ex, 405, "{\"error\":\"unsupported\"}");
+            }
+        } catch (Exception e) {
+            log.warn("Request failed: {}", e.getMessage(), e);
+            respond(ex, 500, "{\"error\":" + TranscodeJob.quote(String.valueOf(e.getMessage())) + "}");
+        }
+    }
+
+    private void handleMetrics(HttpExchange ex) throws IOException {
+        if (!checkAccess(ex)) return;
+        if (!"/metrics".equals(ex.getRequestURI().getPath())) {
+            respond(ex, 404, "{\"error\":\"not found\"}");
+            return;
+        }
+        int queued = 0, running = 0;
+        for (TranscodeJob j : jobs.values()) {
+            if (j.getStatus() == TranscodeJob.Status.QUEUED) queued++;
+            else if (j.getStatus() == TranscodeJob.Status.RUNNING) running++;
+        }
+        String body = "{"
+                + "\"uptimeMillis\":" + (System.currentTimeMillis() - startedAt)
+                + ",\"queued\":" + queued
+                + ",\"running\":" + running
+                + ",\"succeeded\":" + succeeded.get()
+                + ",\"failed\":" + failed.get()
+                + ",\"recordsTotal\":" + recordsTotal.get()
+                + ",\"cpuWorkersFree\":" + cpuPermits.availablePermits() + ",\"cpuWorkersMax\":" + maxCpuWorkers
+                + ",\"mappedBytesFree\":" + mappedMbPermits.availablePermits() * MB + ",\"mappedBytesMax\":" + mappedBudgetMb * MB
+                + ",\"openFilesFree\":" + filePermits.availablePermits() + ",\"openFilesMax\":" + maxOpenFiles
+                + ",\"heapUsedBytes\":" + (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory())
+                + "}";
+        respond(ex, 200, body);
+    }
+
+    private TranscoderMain.Options toOptions(Map<String, String> p) throws RequestException, IOException {
+        String input = p.get("input");
+        String output = p.get("output");
+        String inputCharset = p.get("inputCharset");
+        if (input == null || output == null || inputCharset == null) {
+            throw new RequestException(400, "input, inputCharset and output are required");
+        }
+        // canonical paths resolve symlinks and ".." before the root checks
+        File inputFile = new File(input).getCanonicalFile();
+        if (!isUnder(inputFile, inputRoots)) {
+            throw new RequestException(403, "input is outside the configured input roots: " + input);
+        }
+        if (!inputFile.isFile()) {
+            throw new RequestException(400, "input file not found: " + input);
+        }
+        File outputFile = new File(output).getCanonicalFile();
+        if (!isUnder(outputFile, outputRoots)) {
+            throw new RequestException(403, "output is outside the configured output roots: " + output);
+        }
+        if (outputFile.getParentFile() == null || !outputFile.getParentFile().isDirectory() || outputFile.isDirectory()) {
+            throw new RequestException(400, "output must be a file in an existing directory: " + output);
+        }
+        if (outputFile.exists() && !"true".equalsIgnoreCase(p.get("overwrite"))) {
+            throw new RequestException(409, "output already exists, pass overwrite=true to replace it: " + output);
+        }
+        TranscoderMain.Options options = new TranscoderMain.Options();
+        options.setInputFile(inputFile);
+        options.setInputCharset(inputCharset);
+        options.setOutputFile(outputFile);
+        try {
+            if (p.containsKey("outputCharset")) options.setOutputCharset(p.get("outputCharset"));
+            if (p.containsKey("parser")) options.setParser(p.get("parser"));
+            if (p.containsKey("chunkSize")) options.setChunkSize(Long.parseLong(p.get("chunkSize")));
+            if (p.containsKey("delimiter")) options.setDelimiter(p.get("delimiter").charAt(0));
+            if (p.containsKey("quoteChar")) options.setQuoteChar(p.get("quoteChar").charAt(0));
+            if (p.containsKey("maxBufferedFieldChars")) options.setMaxBufferedFieldChars(Integer.parseInt(p.get("maxBufferedFieldChars")));
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            throw new RequestException(400, "invalid parameter: " + e.getMessage());
+        }
+        if (options.getChunkSize() <= 0) {
+            throw new RequestException(400, "chunkSize must be positive");
+        }
+        // no alias guessing here: a wrong codepage would "succeed" with garbage output
+        requireCharset("inputCharset", options.getInputCharset());
+        requireCharset("outputCharset", options.getOutputCharset());
+        if (!PARSERS.contains(options.getParser().toLowerCase(Locale.ROOT))) {
+            throw new RequestException(400, "parser must be one of " + PARSERS + ", got: " + options.getParser());
+        }
+        options.setParser(options.getParser().toLowerCase(Locale.ROOT));
+        long footprint = mappedFootprint(options);
+        if (footprint > mappedBudgetMb * MB) {
+            throw new RequestException(400, "job would map " + footprint + " bytes (input + output chunk), over the server budget of "
+                    + mappedBudgetMb * MB + "; use a smaller chunkSize");
+        }
+        return options;
+    }
+
+    private static void requireCharset(String param, String name) throws RequestException {
+        boolean supported;
+        try {
+            supported = name != null && Charset.isSupported(name.trim());
+        } catch (IllegalCharsetNameException e) {
+            supported = false;
+        }
+        if (!supported) {
+            throw new RequestException(400, param + " is not a charset supported by this JVM: " + name);
+        }
+    }
+
+    /** Bytes a job keeps mapped at once: one input chunk plus one output chunk. */
+    private static long mappedFootprint(TranscoderMain.Options options) {
+        return Math.min(options.getChunkSize(), options.getInputFile().length()) + options.getChunkSize();
+    }
+
+    private static boolean isUnder(File file, List<Path> roots) {
+        Path path = file.toPath();
+        for (Path root : roots) {
+            if (path.startsWith(root) && !path.equals(root)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rejects browser-originated requests (Origin header, non-loopback Host) and requests
+     * without the bearer token. Responds itself and returns false when access is denied.
+     */
+    private boolean checkAccess(HttpExchange ex) throws IOException {
+        if (ex.getRequestHeaders().containsKey("Origin")) {
+            respond(ex, 403, "{\"error\":\"cross-origin requests are not accepted\"}");
+            return false;
+        }
+        if (!isLoopbackHost(ex.getRequestHeaders().getFirst("Host"))) {
+            respond(ex, 403, "{\"error\":\"Host must be a loopback address\"}");
+            return false;
+        }
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        byte[] presented = auth != null && auth.startsWith("Bearer ")
+                ? auth.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+        if (!MessageDigest.isEqual(token, presented)) {
+            respond(ex, 401, "{\"error\":\"missing or invalid token\"}");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isLoopbackHost(String host) {
+        if (host == null) return false;
+        String h = host.trim().toLowerCase(Locale.ROOT);
+        if (h.startsWith("[")) {
+            int end = h.indexOf(']');
+            h = end > 0 ? h.substring(0, end + 1) : h;
+        } else if (h.indexOf(':') >= 0) {
+            h = h.substring(0, h.indexOf(':'));
+        }
+        return h.equals("localhost") || h.equals("127.0.0.1") || h.equals("[::1]");
+    }
+
+    /**
+     * Read the shared token, or generate one into a new owner-only (0600) file.
+     * An existing token file that group or others can access is refused.
+     */
+    private static String loadOrCreateToken(Path file) throws IOException {
+        if (Files.exists(file)) {
+            try {
+                for (PosixFilePermission perm : Files.getPosixFilePermissions(file)) {
+                    if (perm != PosixFilePermission.OWNER_READ && perm != PosixFilePermission.OWNER_WRITE) {
+                        throw new IOException("Token file " + file + " must only be accessible by its owner (chmod 600)");
+                    }
+                }
+            } catch (UnsupportedOperationException ignored) {
+                // non-POSIX file system; rely on its ACLs
+            }
+            String t = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+            if (t.isEmpty()) throw new IOException("Token file " + file + " is empty");
+            return t;
+        }
+        byte[] raw = new byte[32];
+        new SecureRandom().nextBytes(raw);
+        StringBuilder sb = new StringBuilder(raw.length * 2);
+        for (byte b : raw) sb.append(String.format("%02x", b));
+        Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rw-------");
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(ownerOnly));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(file);
+        }
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        log.info("Generated access token in {}", file);
+        return sb.toString();
+    }
+
+    private static Map<String, String> parseParams(HttpExchange ex) throws IOException, RequestException {
+        Map<String, String> params = new HashMap<>();
+        parseQuery(ex.getRequestURI().getRawQuery(), params);
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if (body.length > 0) {
+                String type = ex.getRequestHeaders().getFirst("Content-Type");
+                if (type == null || !type.toLowerCase(Locale.ROOT).startsWith("application/x-www-form-urlencoded")) {
+                    throw new RequestException(415, "request body must be application/x-www-form-urlencoded");
+                }
+                parseQuery(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseQuery(String query, Map<String, String> params) {
+        if (query == null || query.isEmpty()) return;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void respond(HttpExchange ex, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static final class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static int toMb(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bytes + MB - 1) / MB));
+    }
+
+    /**
+     * Virtual thread per job on JDK 21+, looked up reflectively so the jar still targets Java 11.
+     * Jobs block on permits and on file IO, which is exactly what virtual threads are cheap for.
+     */
+    private static ExecutorService newJobExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService es = (ExecutorService) m.invoke(null);
+            log.info("Running jobs on virtual threads");
+            return es;
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads not available on this JVM, running jobs on a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}